@@ -0,0 +1,239 @@
+package gui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class Analytics {
+
+    public static final double DECAY = 0.98; // How much of a cell's heat is left after each generation.
+    public static final int BUFFER_SIZE = 64 * 1024; // Size of the CSV write buffer in bytes.
+
+    public final int gridWidth;
+    public final int gridHeight;
+
+    // Heat is only decayed when it's touched. heatGeneration stores the generation each cell's heat was last worked
+    // out at, so nothing has to loop over the grid every generation.
+    public float[] heat;
+    public int[] heatGeneration;
+
+    public int population = 0;
+    public int births = 0; // Births in the current generation.
+    public int deaths = 0; // Deaths in the current generation.
+
+    // How many live cells are in each row and column, used to keep the bounding box up to date.
+    public int[] rowCount;
+    public int[] columnCount;
+
+    // The bounding box of the live cells. All -1 when there are no live cells.
+    public int minX = -1;
+    public int minY = -1;
+    public int maxX = -1;
+    public int maxY = -1;
+
+    public int generation = 0;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private final StringBuilder line = new StringBuilder();
+
+
+    public Analytics(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+
+        heat = new float[gridWidth * gridHeight];
+        heatGeneration = new int[gridWidth * gridHeight];
+
+        rowCount = new int[gridHeight];
+        columnCount = new int[gridWidth];
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Records a cell coming alive.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void birth(int x, int y) {
+        births++;
+        addHeat(x, y);
+        placed(x, y);
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Records a cell dying.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void death(int x, int y) {
+        deaths++;
+        addHeat(x, y);
+        removed(x, y);
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Records a live cell being drawn by the user. Only the population and bounding box are changed, it doesn't count as
+    a birth.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void placed(int x, int y) {
+
+        population++;
+
+        rowCount[y]++;
+        columnCount[x]++;
+
+        if (population == 1) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Records a live cell being removed, either by the user or by dying. If it was the last live cell on an edge of the
+    bounding box, the box is shrunk until it hits a row or column that still has a live cell in it.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void removed(int x, int y) {
+
+        population--;
+
+        rowCount[y]--;
+        columnCount[x]--;
+
+        if (population == 0) {
+            minX = maxX = minY = maxY = -1;
+            return;
+        }
+
+        while (minY < maxY && rowCount[minY] == 0) {
+            minY++;
+        }
+
+        while (maxY > minY && rowCount[maxY] == 0) {
+            maxY--;
+        }
+
+        while (minX < maxX && columnCount[minX] == 0) {
+            minX++;
+        }
+
+        while (maxX > minX && columnCount[maxX] == 0) {
+            maxX--;
+        }
+    }
+
+    private void addHeat(int x, int y) {
+        int index = (y * gridWidth) + x;
+        heat[index] = (float) getHeat(x, y) + 1;
+        heatGeneration[index] = generation;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Gets how active a cell has been. Every birth or death adds 1, and it fades by DECAY each generation.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public double getHeat(int x, int y) {
+
+        int index = (y * gridWidth) + x;
+
+        if (heat[index] == 0) {
+            return 0;
+        }
+
+        return heat[index] * Math.pow(DECAY, generation - heatGeneration[index]);
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Runs once all of a generation's births and deaths have been recorded. Writes a row to the CSV if it's recording,
+    then moves on to the next generation.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void endGeneration() throws IOException {
+
+        generation++;
+
+        if (channel != null) {
+            line.setLength(0);
+            line.append(generation).append(',')
+                    .append(population).append(',')
+                    .append(births).append(',')
+                    .append(deaths).append(',')
+                    .append(minX).append(',')
+                    .append(minY).append(',')
+                    .append(maxX).append(',')
+                    .append(maxY).append('\n');
+
+            write(line);
+        }
+
+        births = 0;
+        deaths = 0;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Starts streaming the population, births, deaths and bounding box of every generation to a CSV file. Rows are
+    collected in a buffer and only written to the file when it fills up.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void startRecording(Path path) throws IOException {
+
+        stopRecording();
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        write("generation,population,births,deaths,min_x,min_y,max_x,max_y\n");
+    }
+
+    public boolean isRecording() {
+        return channel != null;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes anything left in the buffer to the file and closes it.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void stopRecording() throws IOException {
+
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private void write(CharSequence text) throws IOException {
+
+        if (buffer.remaining() < text.length()) {
+            flush();
+        }
+
+        // Everything written is plain ASCII so each character is one byte.
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void flush() throws IOException {
+
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
@@ -3,6 +3,7 @@ package gui;
 public class Cell {
 
     public int id;
+    public int drawn; // The state the cell was last drawn in, this can differ from id for dead cells.
     public boolean hasUpdated;
 
     public int x;
@@ -10,6 +11,7 @@ public class Cell {
 
     public Cell(int x, int y) {
         id = 0; // 0 =
+        drawn = 0;
         hasUpdated = false;
 
         this.x = x;
@@ -0,0 +1,414 @@
+package gui;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Exporter {
+
+    public static final int BUFFER_COUNT = 16; // How many frames can be in flight between the stages at once.
+    public static final int BUFFER_SIZE = 1024 * 1024; // Size of the GIF write buffer in bytes.
+
+    // Palette indexes, these match the colours used by MainWindow.drawCell(). UNCHANGED is transparent and is used in
+    // GIF frames for cells that look the same as in the frame before.
+    private static final byte EMPTY = 0;
+    private static final byte ALIVE = 1;
+    private static final byte DEAD = 2;
+    private static final byte UNCHANGED = 3;
+
+    private static final IndexColorModel PALETTE = new IndexColorModel(8, 4,
+            new byte[] {(byte) 0x00, (byte) 0xa0, (byte) 0x22, (byte) 0x00},
+            new byte[] {(byte) 0x00, (byte) 0xff, (byte) 0x22, (byte) 0x00},
+            new byte[] {(byte) 0x00, (byte) 0x46, (byte) 0x22, (byte) 0x00},
+            UNCHANGED);
+
+    public final File output;
+    public final boolean isGif;
+    public final int generations;
+
+    public final int gridWidth;
+    public final int gridHeight;
+    public final int cellSize;
+    public final int delay; // Delay between GIF frames in hundredths of a second.
+
+    public final AtomicLong framesWritten = new AtomicLong(0);
+    public volatile boolean isFinished = false;
+    public volatile Exception error = null;
+
+    private byte[] cells; // The starting board, owned by the simulation thread once started.
+
+    private final BlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<Frame>(BUFFER_COUNT);
+    private final BlockingQueue<Frame> toRasterise = new ArrayBlockingQueue<Frame>(BUFFER_COUNT + 1);
+    private final BlockingQueue<Frame> toEncode = new ArrayBlockingQueue<Frame>(BUFFER_COUNT + 1);
+
+    private Thread simulationThread;
+    private Thread rasterThread;
+    private Thread encoderThread;
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    A single frame buffer. It holds the state of every cell for one generation and the image it is rasterised into.
+    Frames are recycled through the free queue so nothing is allocated once the export has started.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private static class Frame {
+
+        static final Frame END = new Frame(); // Passed down the pipeline once the last generation has been simulated.
+
+        byte[] cells;
+        BufferedImage image;
+        int generation;
+
+        // The cells that changed since the previous frame. right is less than left if nothing changed.
+        int left;
+        int top;
+        int right;
+        int bottom;
+
+        Frame() {
+        }
+
+        Frame(int cellCount, int imageWidth, int imageHeight) {
+            cells = new byte[cellCount];
+            image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Takes a copy of the grid as it is drawn on the canvas, so the export can run on its own threads while the window
+    carries on. If the output file ends in .gif the frames are encoded as one animated GIF, otherwise they are written
+    as a numbered PNG sequence next to the output file (run.png becomes run_000000.png, run_000001.png, ...).
+    ----------------------------------------------------------------------------------------------------------------- */
+    public Exporter(Cell[][] grid, int gridWidth, int gridHeight, int cellSize, int generations, long interval, File output) {
+
+        this.output = output;
+        this.isGif = output.getName().toLowerCase().endsWith(".gif");
+        this.generations = generations;
+
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.cellSize = cellSize;
+        this.delay = (int) Math.max(1, interval / 10000000);
+
+        cells = new byte[gridWidth * gridHeight];
+
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+                cells[(y * gridWidth) + x] = (byte) grid[y][x].drawn;
+            }
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Starts the three stages of the pipeline. Simulation, rasterisation and encoding each get their own thread and hand
+    frames to each other through bounded queues, so the export runs as fast as the slowest stage and never holds more
+    than BUFFER_COUNT frames in memory.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void start() {
+
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            freeFrames.add(new Frame(cells.length, gridWidth * cellSize, gridHeight * cellSize));
+        }
+
+        simulationThread = createThread("export-simulation", this::simulate);
+        rasterThread = createThread("export-raster", this::rasterise);
+        encoderThread = createThread("export-encoder", this::encode);
+
+        simulationThread.start();
+        rasterThread.start();
+        encoderThread.start();
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Stops every stage. Whatever has already been encoded is left on disk.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void cancel() {
+
+        if (simulationThread != null) {
+            simulationThread.interrupt();
+            rasterThread.interrupt();
+            encoderThread.interrupt();
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Wraps a stage in a daemon thread so an unfinished export never keeps the application open. If a stage fails the
+    error is stored and the other stages are stopped.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private Thread createThread(String name, PipelineStage stage) {
+
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException ignored) {
+                // Cancelled, or another stage failed.
+            } catch (Exception exception) {
+                if (error == null) {
+                    error = exception;
+                }
+                cancel();
+            }
+        }, name);
+
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private interface PipelineStage {
+        void run() throws Exception;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Stage one. Steps the board one generation at a time and copies each generation into a free frame buffer. The first
+    frame is the board as it was when the export was started.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void simulate() throws InterruptedException {
+
+        byte[] current = cells;
+        byte[] next = new byte[current.length];
+
+        for (int generation = 0; generation <= generations; generation++) {
+
+            if (generation > 0) {
+                step(current, next);
+
+                byte[] temp = current;
+                current = next;
+                next = temp;
+            }
+
+            Frame frame = freeFrames.take();
+            System.arraycopy(current, 0, frame.cells, 0, current.length);
+            frame.generation = generation;
+
+            toRasterise.put(frame);
+        }
+
+        toRasterise.put(Frame.END);
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Works out the next generation of the board. Uses the same rules as MainWindow.update(): a live cell with 2 or 3 live
+    neighbours stays alive, a dead cell with exactly 3 comes alive and everything else dies. Cells off the edge of the
+    grid count as dead.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void step(byte[] current, byte[] next) {
+
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+
+                int total = 0;
+
+                for (int dy = -1; dy <= 1; dy++) {
+                    int ny = y + dy;
+
+                    if (ny < 0 || ny >= gridHeight) {
+                        continue;
+                    }
+
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+
+                        if ((dx != 0 || dy != 0) && nx >= 0 && nx < gridWidth && current[(ny * gridWidth) + nx] == ALIVE) {
+                            total++;
+                        }
+                    }
+                }
+
+                int index = (y * gridWidth) + x;
+                byte state = current[index];
+
+                if (state == ALIVE) {
+                    next[index] = (total == 2 || total == 3) ? ALIVE : DEAD;
+                } else {
+                    next[index] = (total == 3) ? ALIVE : state;
+                }
+            }
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Stage two. Draws each frame's cells straight into the pixels of its indexed image, the same way drawCell() fills the
+    canvas (a 2 pixel black gap is left between cells). It also works out which cells changed since the last frame so
+    the GIF encoder only has to write that part. For GIFs, cells that haven't changed are drawn as UNCHANGED so they
+    compress down to almost nothing.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void rasterise() throws InterruptedException {
+
+        int imageWidth = gridWidth * cellSize;
+        int fill = cellSize - 2;
+
+        byte[] previous = new byte[gridWidth * gridHeight];
+
+        while (true) {
+            Frame frame = toRasterise.take();
+
+            if (frame == Frame.END) {
+                toEncode.put(frame);
+                return;
+            }
+
+            byte[] pixels = ((DataBufferByte) frame.image.getRaster().getDataBuffer()).getData();
+
+            // The first frame is always written in full.
+            if (frame.generation == 0) {
+                frame.left = 0;
+                frame.top = 0;
+                frame.right = gridWidth - 1;
+                frame.bottom = gridHeight - 1;
+            } else {
+                frame.left = gridWidth;
+                frame.top = gridHeight;
+                frame.right = -1;
+                frame.bottom = -1;
+            }
+
+            for (int y = 0; y < gridHeight; y++) {
+                for (int x = 0; x < gridWidth; x++) {
+
+                    int index = (y * gridWidth) + x;
+                    byte state = frame.cells[index];
+                    byte gap = EMPTY;
+
+                    if (state != previous[index]) {
+                        frame.left = Math.min(frame.left, x);
+                        frame.top = Math.min(frame.top, y);
+                        frame.right = Math.max(frame.right, x);
+                        frame.bottom = Math.max(frame.bottom, y);
+                    } else if (isGif && frame.generation > 0) {
+                        state = UNCHANGED;
+                        gap = UNCHANGED;
+                    }
+
+                    int start = (y * cellSize * imageWidth) + (x * cellSize);
+
+                    for (int row = 0; row < cellSize; row++) {
+                        int offset = start + (row * imageWidth);
+
+                        if (row < fill) {
+                            Arrays.fill(pixels, offset, offset + fill, state);
+                            Arrays.fill(pixels, offset + fill, offset + cellSize, gap);
+                        } else {
+                            Arrays.fill(pixels, offset, offset + cellSize, gap);
+                        }
+                    }
+                }
+            }
+
+            System.arraycopy(frame.cells, 0, previous, 0, previous.length);
+            toEncode.put(frame);
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Stage three. Encodes each image and hands the frame back to the simulation thread to be reused.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void encode() throws InterruptedException, IOException {
+
+        if (isGif) {
+            encodeGif();
+        } else {
+            encodePngSequence();
+        }
+
+        isFinished = true;
+    }
+
+    private void encodePngSequence() throws InterruptedException, IOException {
+
+        String name = output.getName();
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+
+        while (true) {
+            Frame frame = toEncode.take();
+
+            if (frame == Frame.END) {
+                return;
+            }
+
+            File file = new File(output.getAbsoluteFile().getParentFile(), String.format("%s_%06d.png", base, frame.generation));
+            ImageIO.write(frame.image, "png", file);
+
+            framesWritten.incrementAndGet();
+            freeFrames.offer(frame); // There is always room, every frame came from this queue.
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes the frames as one animated GIF. Only the rectangle of cells that changed is written for each frame, the
+    rest is left showing from the frames before it. If the export is cancelled the frames written so far are finished
+    off into a valid GIF.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void encodeGif() throws InterruptedException, IOException {
+
+        byte[] palette = new byte[PALETTE.getMapSize() * 3];
+
+        for (int i = 0; i < PALETTE.getMapSize(); i++) {
+            palette[(i * 3)] = (byte) PALETTE.getRed(i);
+            palette[(i * 3) + 1] = (byte) PALETTE.getGreen(i);
+            palette[(i * 3) + 2] = (byte) PALETTE.getBlue(i);
+        }
+
+        boolean cancelled = false;
+
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE)) {
+            GifWriter writer = new GifWriter(stream, gridWidth * cellSize, gridHeight * cellSize, palette);
+
+            while (true) {
+                Frame frame;
+
+                try {
+                    frame = toEncode.take();
+                } catch (InterruptedException exception) {
+                    cancelled = true;
+                    break;
+                }
+
+                if (frame == Frame.END) {
+                    break;
+                }
+
+                byte[] pixels = ((DataBufferByte) frame.image.getRaster().getDataBuffer()).getData();
+
+                // Nothing changed, so a single unchanged pixel is written to keep the frame's delay.
+                if (frame.right < frame.left) {
+                    writer.writeFrame(pixels, 0, 0, 1, 1, delay, UNCHANGED);
+                } else {
+                    writer.writeFrame(pixels, frame.left * cellSize, frame.top * cellSize,
+                            (frame.right - frame.left + 1) * cellSize, (frame.bottom - frame.top + 1) * cellSize, delay, UNCHANGED);
+                }
+
+                framesWritten.incrementAndGet();
+                freeFrames.offer(frame); // There is always room, every frame came from this queue.
+            }
+
+            writer.finish();
+        } catch (IOException exception) {
+            output.delete(); // A GIF that failed part way through can't be read.
+            throw exception;
+        }
+
+        if (cancelled) {
+            throw new InterruptedException();
+        }
+    }
+}
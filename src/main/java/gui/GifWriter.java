@@ -0,0 +1,220 @@
+package gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class GifWriter {
+
+    // The palette only has 4 colours so every pixel fits in 2 bits.
+    private static final int MIN_CODE_SIZE = 2;
+    private static final int CLEAR_CODE = 1 << MIN_CODE_SIZE;
+    private static final int END_CODE = CLEAR_CODE + 1;
+    private static final int MAX_CODES = 4096; // GIF codes are at most 12 bits.
+
+    public final int width;
+    public final int height;
+
+    private final OutputStream out;
+
+    // The LZW dictionary. The code for a string followed by a pixel is at (code of the string * 4) + pixel, 0 if there
+    // isn't one yet. 0 is never given out as a code for a string so it's safe to use as empty.
+    private final int[] dictionary = new int[MAX_CODES << MIN_CODE_SIZE];
+    private int nextCode;
+    private int codeSize;
+    private int maxCode;
+    private boolean hasCleared;
+
+    // Bits waiting to be written and the data sub-block they are written into.
+    private int bits;
+    private int bitCount;
+    private final byte[] block = new byte[255];
+    private int blockSize;
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes the start of an animated GIF that loops forever. palette holds the red, green and blue of each of the 4
+    colours one after another.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public GifWriter(OutputStream out, int width, int height, byte[] palette) throws IOException {
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+
+        writeAscii("GIF89a");
+
+        // Logical screen descriptor with a 4 colour global colour table.
+        writeShort(width);
+        writeShort(height);
+        out.write(0x80 | ((MIN_CODE_SIZE - 1) << 4) | (MIN_CODE_SIZE - 1));
+        out.write(0); // Background colour.
+        out.write(0); // Pixel aspect ratio.
+        out.write(palette, 0, 3 << MIN_CODE_SIZE);
+
+        // NETSCAPE2.0 extension so the animation repeats forever.
+        out.write(0x21);
+        out.write(0xff);
+        out.write(11);
+        writeAscii("NETSCAPE2.0");
+        out.write(3);
+        out.write(1);
+        writeShort(0); // Loop count, 0 is forever.
+        out.write(0);
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes one frame. Only the rectangle at x, y of the given size is written, taken from pixels which is laid out in
+    rows of the full image width. Everything outside the rectangle and any transparent pixels inside it keep showing
+    the frames before. delay is in hundredths of a second.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void writeFrame(byte[] pixels, int x, int y, int frameWidth, int frameHeight, int delay, int transparent) throws IOException {
+
+        // Graphic control extension, the frame is left in place when the next one is drawn.
+        out.write(0x21);
+        out.write(0xf9);
+        out.write(4);
+        out.write((1 << 2) | 1);
+        writeShort(delay);
+        out.write(transparent);
+        out.write(0);
+
+        // Image descriptor, using the global colour table.
+        out.write(0x2c);
+        writeShort(x);
+        writeShort(y);
+        writeShort(frameWidth);
+        writeShort(frameHeight);
+        out.write(0);
+
+        out.write(MIN_CODE_SIZE);
+        compress(pixels, x, y, frameWidth, frameHeight);
+        out.write(0); // Block terminator.
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes the end of the GIF and flushes it. The stream is not closed.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void finish() throws IOException {
+        out.write(0x3b);
+        out.flush();
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    LZW compresses the rectangle. With only 4 colours the dictionary is a plain array lookup rather than a hash table,
+    which keeps this fast enough for frames with millions of pixels.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void compress(byte[] pixels, int x, int y, int frameWidth, int frameHeight) throws IOException {
+
+        resetDictionary();
+        codeSize = MIN_CODE_SIZE + 1;
+        maxCode = (1 << codeSize) - 1;
+        hasCleared = false;
+
+        writeCode(CLEAR_CODE);
+
+        int start = (y * width) + x;
+        int current = pixels[start];
+
+        for (int row = 0; row < frameHeight; row++) {
+            int offset = start + (row * width);
+
+            for (int column = (row == 0) ? 1 : 0; column < frameWidth; column++) {
+
+                int pixel = pixels[offset + column];
+                int key = (current << MIN_CODE_SIZE) | pixel;
+
+                if (dictionary[key] != 0) {
+                    current = dictionary[key];
+                    continue;
+                }
+
+                writeCode(current);
+                current = pixel;
+
+                if (nextCode < MAX_CODES) {
+                    dictionary[key] = nextCode++;
+                } else {
+                    // The dictionary is full, start a new one.
+                    resetDictionary();
+                    hasCleared = true;
+                    writeCode(CLEAR_CODE);
+                }
+            }
+        }
+
+        writeCode(current);
+        writeCode(END_CODE);
+
+        // Writing out whatever is left.
+        if (bitCount > 0) {
+            writeByte(bits & 0xff);
+            bits = 0;
+            bitCount = 0;
+        }
+
+        if (blockSize > 0) {
+            writeBlock();
+        }
+    }
+
+    private void resetDictionary() {
+        Arrays.fill(dictionary, 0);
+        nextCode = END_CODE + 1;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes a code using the current code size, then grows the code size once the dictionary has outgrown it (or
+    shrinks it back down after a clear code). The order here has to match what GIF decoders expect.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void writeCode(int code) throws IOException {
+
+        bits |= code << bitCount;
+        bitCount += codeSize;
+
+        while (bitCount >= 8) {
+            writeByte(bits & 0xff);
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+
+        if (hasCleared) {
+            codeSize = MIN_CODE_SIZE + 1;
+            maxCode = (1 << codeSize) - 1;
+            hasCleared = false;
+        } else if (nextCode > maxCode && codeSize < 12) {
+            codeSize++;
+            maxCode = (codeSize == 12) ? MAX_CODES : (1 << codeSize) - 1;
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+
+        block[blockSize++] = (byte) value;
+
+        if (blockSize == block.length) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        out.write(blockSize);
+        out.write(block, 0, blockSize);
+        blockSize = 0;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+}
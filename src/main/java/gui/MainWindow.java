@@ -8,7 +8,9 @@ import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
@@ -16,7 +18,10 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Optional;
 
 public class MainWindow {
 
@@ -44,11 +49,20 @@ public class MainWindow {
     public int generation = 0;
     public Text generationNumber;
 
+    public Exporter exporter;
+    public Text exportStatus;
+
+    public Analytics analytics;
+    public Text analyticsStatus;
+    public Canvas heatmap; // Drawn over the grid to show where the most activity has been.
+    public final int heatmapInterval = 10; // How many generations between each redraw of the heatmap.
+
     public Pane display = new Pane();
     public Scene scene = new Scene(display);
 
     public AnimationTimer tick;
     public ArrayList<Cell> aliveCells = new ArrayList<Cell>(0);
+    public TileTracker tiles;
 
 
     public MainWindow(Stage window) {
@@ -82,6 +96,9 @@ public class MainWindow {
             }
         }
 
+        tiles = new TileTracker(this);
+        analytics = new Analytics(gridWidth, gridHeight);
+
     }
 
 
@@ -105,6 +122,11 @@ public class MainWindow {
 
         render(canvas);
 
+        heatmap = new Canvas(width, height);
+        heatmap.setMouseTransparent(true);
+        heatmap.setVisible(false);
+        render(heatmap);
+
 
         // Buttons.
 
@@ -113,7 +135,10 @@ public class MainWindow {
         int y = (int) height - (int) (size); // The y level of each button.
 
         Button exit = createButton("exit", size, size, X_PADDING, y); // Exits the application.
-        exit.setOnAction(ExitEvent -> Platform.exit());
+        exit.setOnAction(ExitEvent -> {
+            stopRecording(); // Writes out any analytics still in the buffer.
+            Platform.exit();
+        });
         render(exit);
 
         Button clear = createButton("clear", size, size, width - size - X_PADDING, y); // Resets the board.
@@ -136,6 +161,20 @@ public class MainWindow {
         generationNumber.setFill(Color.web("#a0ff46"));
         render(generationNumber);
 
+        exportStatus = new Text();
+        exportStatus.setLayoutX(middle + (int)(2.75 * size));
+        exportStatus.setLayoutY(y + (size / 2.5));
+        exportStatus.setFont(new Font(0.025 * height));
+        exportStatus.setFill(Color.web("#a0ff46"));
+        render(exportStatus);
+
+        analyticsStatus = new Text();
+        analyticsStatus.setLayoutX(middle + (int)(2.75 * size));
+        analyticsStatus.setLayoutY(y + (size / 1.25));
+        analyticsStatus.setFont(new Font(0.025 * height));
+        analyticsStatus.setFill(Color.web("#a0ff46"));
+        render(analyticsStatus);
+
 
         // Toggle Buttons.
 
@@ -151,6 +190,7 @@ public class MainWindow {
         render(new Group(stop, play, pause));
 
         setupMouseListener();
+        setupKeyListener();
         setupTick();
     }
 
@@ -201,6 +241,166 @@ public class MainWindow {
     }
 
 
+    /* -----------------------------------------------------------------------------------------------------------------
+    Sets up the key listener. E exports the board from its current state to an animated GIF or a PNG sequence, pressing
+    it again while an export is running cancels it. H shows or hides the heatmap and R starts or stops recording the
+    population analytics to a CSV file.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void setupKeyListener() {
+        scene.setOnKeyPressed(new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent keyEvent) {
+
+                if (keyEvent.getCode() == KeyCode.E) {
+                    if (exporter != null && !exporter.isFinished && exporter.error == null) {
+                        exporter.cancel();
+                        exporter = null;
+                        exportStatus.setText("Export cancelled");
+                    } else {
+                        export();
+                    }
+                }
+
+                else if (keyEvent.getCode() == KeyCode.H) {
+                    heatmap.setVisible(!heatmap.isVisible());
+                    drawHeatmap();
+                }
+
+                else if (keyEvent.getCode() == KeyCode.R) {
+                    if (analytics.isRecording()) {
+                        stopRecording();
+                    } else {
+                        startRecording();
+                    }
+                }
+            }
+        });
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Asks where to save the export and how many generations to run for, then starts the export in the background. The
+    board is copied when the export starts so the window can keep playing while it runs.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void export() {
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export");
+        chooser.setInitialFileName("life.gif");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Animated GIF", "*.gif"),
+                new FileChooser.ExtensionFilter("PNG sequence", "*.png"));
+
+        File output = chooser.showSaveDialog(window);
+
+        if (output == null) {
+            return;
+        }
+
+        TextInputDialog dialog = new TextInputDialog("1000");
+        dialog.initOwner(window);
+        dialog.setTitle("Export");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Generations:");
+
+        Optional<String> result = dialog.showAndWait();
+
+        if (!result.isPresent()) {
+            return;
+        }
+
+        int generations = -1;
+
+        try {
+            generations = Integer.parseInt(result.get().trim());
+        } catch (NumberFormatException ignored) {
+        }
+
+        if (generations <= 0) {
+            exportStatus.setText("Export: enter a positive number of generations");
+            return;
+        }
+
+        exporter = new Exporter(grid, gridWidth, gridHeight, cellSize, generations, interval, output);
+        exporter.start();
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Asks where to save the CSV and starts recording the analytics for each generation to it.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void startRecording() {
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Record analytics");
+        chooser.setInitialFileName("life.csv");
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+
+        File output = chooser.showSaveDialog(window);
+
+        if (output == null) {
+            return;
+        }
+
+        try {
+            analytics.startRecording(output.toPath());
+            analyticsStatus.setText("Recording analytics");
+        } catch (IOException exception) {
+            analyticsStatus.setText("Recording failed: " + exception.getMessage());
+        }
+    }
+
+    public void stopRecording() {
+        stopRecording("Recording stopped");
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Writes out and closes the CSV if it's recording, then shows the given message.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void stopRecording(String message) {
+
+        if (!analytics.isRecording()) {
+            return;
+        }
+
+        try {
+            analytics.stopRecording();
+            analyticsStatus.setText(message);
+        } catch (IOException exception) {
+            analyticsStatus.setText("Recording failed: " + exception.getMessage());
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Redraws the heatmap over the grid. Cells are coloured more strongly the more they have changed recently.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void drawHeatmap() {
+
+        heatmap.getGraphicsContext2D().clearRect(0, 0, width, height);
+
+        if (!heatmap.isVisible()) {
+            return;
+        }
+
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+
+                double heat = analytics.getHeat(x, y);
+
+                // Skipping cells that have barely changed.
+                if (heat < 0.05) {
+                    continue;
+                }
+
+                heatmap.getGraphicsContext2D().setFill(Color.rgb(255, 60, 0, Math.min(0.8, heat / 10)));
+                heatmap.getGraphicsContext2D().fillRect(X_PADDING + (cellSize * x), Y_PADDING + (cellSize * y), cellSize - 2, cellSize - 2);
+            }
+        }
+    }
+
+
     /* -----------------------------------------------------------------------------------------------------------------
     Find the square based on the mouse position and then updates the colour. If the colour is green, set it to black. If
     it's black, set it to green.
@@ -224,14 +424,23 @@ public class MainWindow {
             if (0 <= gridYPosition && gridYPosition < gridHeight) {
                 if (!grid[gridYPosition][gridXPosition].hasUpdated) {
 
+                    tiles.wake(gridXPosition, gridYPosition);
+
                     if (grid[gridYPosition][gridXPosition].id == 0) {
                         grid[gridYPosition][gridXPosition].id = 1;
                         aliveCells.add(grid[gridYPosition][gridXPosition]);
+                        analytics.placed(gridXPosition, gridYPosition);
                         drawCell(1, gridXPosition, gridYPosition);
 
                     } else if (grid[gridYPosition][gridXPosition].id == 1) {
                         grid[gridYPosition][gridXPosition].id = 2;
-                        removeDeadCells(aliveCells);
+
+                        // Removing by position as aliveCells can hold copies of the grid's cells after a generation.
+                        final int cellX = gridXPosition;
+                        final int cellY = gridYPosition;
+                        aliveCells.removeIf(cell -> cell.x == cellX && cell.y == cellY);
+
+                        analytics.removed(gridXPosition, gridYPosition);
                         drawCell(2, gridXPosition, gridYPosition);
 
                     } else {
@@ -247,7 +456,8 @@ public class MainWindow {
 
     /* -----------------------------------------------------------------------------------------------------------------
     Creates the window, sets the window to full screen mode and disables the exit full screen key.
-    It sets the display Pane to the root of the scene so that it can be updated whenever.
+    It sets the display Pane to the root of the scene so that it can be updated whenever. Any analytics recording is
+    finished off when the window closes.
     ----------------------------------------------------------------------------------------------------------------- */
     public void setupWindow() {
 
@@ -255,6 +465,7 @@ public class MainWindow {
         window.setScene(scene);
         window.setFullScreen(true);
         window.setFullScreenExitKeyCombination(KeyCombination.NO_MATCH);
+        window.setOnHidden(hiddenEvent -> stopRecording());
         window.show();
     }
 
@@ -340,6 +551,7 @@ public class MainWindow {
 
         // Draw the cell.
         canvas.getGraphicsContext2D().fillRect(xPos, yPos, cellSize - 2, cellSize - 2);
+        grid[y][x].drawn = state;
     }
 
 
@@ -374,6 +586,12 @@ public class MainWindow {
             }
         }
 
+        tiles = new TileTracker(this);
+
+        // A recording only covers one board, so it ends here rather than mixing boards in the same file.
+        stopRecording("Recording stopped: the board was reset");
+        analytics = new Analytics(gridWidth, gridHeight);
+
         aliveCells = new ArrayList<Cell>(0);
 
         // Resetting the canvas.
@@ -381,6 +599,8 @@ public class MainWindow {
         canvas.getGraphicsContext2D().fillRect(0, 0, width, height);
         canvas.getGraphicsContext2D().setFill(Color.BLACK);
         canvas.getGraphicsContext2D().fillRect(X_PADDING - 1, Y_PADDING - 1, CANVAS_WIDTH, CANVAS_HEIGHT);
+
+        drawHeatmap();
     }
 
 
@@ -394,23 +614,62 @@ public class MainWindow {
             @Override
             public void handle(long now) {
 
+                if (exporter != null) {
+                    updateExportStatus();
+                }
+
                 if (isPlaying && now > last + interval) {
 
+                    tiles.checkBorders(generation);
+
                     ArrayList<Cell> toUpdate = getCellsToCheck();
                     aliveCells = update(toUpdate);
 
                     removeDeadCells(toUpdate);
+                    tiles.replay(generation);
 
                     last = now;
                     generation++;
+                    tiles.record(generation);
                     generationNumber.setText("Generation: " + Integer.toString(generation));
 
+                    try {
+                        analytics.endGeneration();
+                    } catch (IOException exception) {
+                        stopRecording();
+                        analyticsStatus.setText("Recording failed: " + exception.getMessage());
+                    }
+
+                    if (generation % heatmapInterval == 0) {
+                        drawHeatmap();
+                    }
+
                 }
             }
         };
         tick.start();
     }
 
+    /* -----------------------------------------------------------------------------------------------------------------
+    Shows how far through the current export is.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void updateExportStatus() {
+
+        if (exporter.error != null) {
+            exportStatus.setText("Export failed: " + exporter.error.getMessage());
+            exporter = null;
+        }
+
+        else if (exporter.isFinished) {
+            exportStatus.setText("Exported " + exporter.framesWritten.get() + " frames");
+            exporter = null;
+        }
+
+        else {
+            exportStatus.setText("Exporting: " + exporter.framesWritten.get() + " / " + (exporter.generations + 1));
+        }
+    }
+
     public void start() {
         isPlaying = true;
     }
@@ -426,35 +685,43 @@ public class MainWindow {
 
 
     /* -----------------------------------------------------------------------------------------------------------------
-    Fetches every cell around the alive cells and adds it to a list.
+    Fetches every cell around the alive cells and adds it to a list. Cells in sleeping tiles are left out as they are
+    replayed by the tile tracker instead, but live cells on the edge of a sleeping tile still count for the awake cells
+    next to them.
     ----------------------------------------------------------------------------------------------------------------- */
     public ArrayList<Cell> getCellsToCheck() {
 
         ArrayList<Cell> toCheck = new ArrayList<Cell>(0);
 
-        for (Cell cell : aliveCells) {
+        ArrayList<Cell> liveCells = new ArrayList<Cell>(aliveCells);
+        liveCells.addAll(tiles.getEdgeCells(generation));
+
+        for (Cell cell : liveCells) {
 
             int x = cell.x;
             int y = cell.y;
 
-            if (!contains(toCheck, x, y)) {
-                Cell toAdd = new Cell(x, y);
-                toAdd.id = 1;
+            // Cells in sleeping tiles are replayed by the tile tracker, so only their neighbours are checked.
+            if (!tiles.isAsleep(x, y)) {
+                if (!contains(toCheck, x, y)) {
+                    Cell toAdd = new Cell(x, y);
+                    toAdd.id = 1;
 
-                toCheck.add(toAdd);
-            }
+                    toCheck.add(toAdd);
+                }
 
-            else {
-                // Looping through the current cells.
-                for (int i = 0; i < toCheck.size(); i ++) {
+                else {
+                    // Looping through the current cells.
+                    for (int i = 0; i < toCheck.size(); i ++) {
 
-                    // Once found the duplicate, replace with current cell.
-                    if (toCheck.get(i).x == x && toCheck.get(i).y == y) {
-                        Cell toUpdate = new Cell(x, y);
-                        toUpdate.id = 1;
+                        // Once found the duplicate, replace with current cell.
+                        if (toCheck.get(i).x == x && toCheck.get(i).y == y) {
+                            Cell toUpdate = new Cell(x, y);
+                            toUpdate.id = 1;
 
-                        toCheck.set(i, toUpdate);
-                        break;
+                            toCheck.set(i, toUpdate);
+                            break;
+                        }
                     }
                 }
             }
@@ -466,21 +733,21 @@ public class MainWindow {
 
                 // Top left.
                 if (x - 1 >= 0) {
-                    if (!contains(toCheck, x - 1, y - 1)) {
+                    if (!tiles.isAsleep(x - 1, y - 1) && !contains(toCheck, x - 1, y - 1)) {
                         toCheck.add(new Cell(x - 1, y - 1));
                     }
                 }
 
 
                 // Top middle.
-                if (!contains(toCheck, x, y - 1)) {
+                if (!tiles.isAsleep(x, y - 1) && !contains(toCheck, x, y - 1)) {
                     toCheck.add(new Cell(x, y - 1));
                 }
 
 
                 // Top right
                 if (x + 1 < gridWidth) {
-                    if (!contains(toCheck, x + 1, y - 1)) {
+                    if (!tiles.isAsleep(x + 1, y - 1) && !contains(toCheck, x + 1, y - 1)) {
                         toCheck.add(new Cell(x + 1, y - 1));
                     }
                 }
@@ -489,14 +756,14 @@ public class MainWindow {
             // The middle row of cells.
             // Left
             if (x - 1 >= 0) {
-                if (!contains(toCheck, x - 1, y)) {
+                if (!tiles.isAsleep(x - 1, y) && !contains(toCheck, x - 1, y)) {
                     toCheck.add(new Cell(x - 1, y));
                 }
             }
 
             // Right.
             if (x + 1 < gridWidth) {
-                if (!contains(toCheck, x + 1, y)) {
+                if (!tiles.isAsleep(x + 1, y) && !contains(toCheck, x + 1, y)) {
                     toCheck.add(new Cell(x + 1, y));
                 }
             }
@@ -507,21 +774,21 @@ public class MainWindow {
 
                 // Bottom left.
                 if (x - 1 >= 0) {
-                    if (!contains(toCheck, x - 1, y + 1)) {
+                    if (!tiles.isAsleep(x - 1, y + 1) && !contains(toCheck, x - 1, y + 1)) {
                         toCheck.add(new Cell(x - 1, y + 1));
                     }
                 }
 
 
                 // Bottom middle.
-                if (!contains(toCheck, x, y + 1)) {
+                if (!tiles.isAsleep(x, y + 1) && !contains(toCheck, x, y + 1)) {
                     toCheck.add(new Cell(x, y + 1));
                 }
 
 
                 // Bottom right
                 if (x + 1 < gridWidth) {
-                    if (!contains(toCheck, x + 1, y + 1)) {
+                    if (!tiles.isAsleep(x + 1, y + 1) && !contains(toCheck, x + 1, y + 1)) {
                         toCheck.add(new Cell(x + 1, y + 1));
                     }
                 }
@@ -633,6 +900,7 @@ public class MainWindow {
                 if (liveCells != 2 && liveCells != 3) {
                     current.id = 2;
                     drawCell(2, current.x, current.y);
+                    analytics.death(current.x, current.y);
                     cells.set(i, current);
                 }
             }
@@ -644,6 +912,7 @@ public class MainWindow {
                 if (liveCells == 3) {
                     current.id = 1;
                     drawCell(1, current.x, current.y);
+                    analytics.birth(current.x, current.y);
                     cells.set(i, current);
                 }
             }
@@ -0,0 +1,338 @@
+package gui;
+
+import java.util.ArrayList;
+
+public class TileTracker {
+
+    public static final int TILE_SIZE = 8; // Tiles are 8 x 8 cells so a whole tile fits into the bits of one long.
+    public static final long EDGE = 0xff818181818181ffL; // The bits of the cells around the outside of a tile.
+
+    public final MainWindow main;
+
+    public final int tilesX; // The number of tiles across the grid.
+    public final int tilesY; // The number of tiles down the grid.
+
+    public boolean[] asleep;
+    public int[] sleptAt; // The generation each sleeping tile went to sleep.
+
+    // The last three generations of each awake tile, newest first. The border is the ring of cells around the tile.
+    public long[][] cellHistory;
+    public long[][] borderHistory;
+    public int[] historyCount;
+
+    // The states a sleeping tile replays, indexed by the parity of the generation.
+    public long[][] cellCache;
+    public long[][] borderCache;
+
+
+    public TileTracker(MainWindow main) {
+        this.main = main;
+
+        tilesX = (MainWindow.gridWidth + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (MainWindow.gridHeight + TILE_SIZE - 1) / TILE_SIZE;
+
+        int tileCount = tilesX * tilesY;
+
+        asleep = new boolean[tileCount];
+        sleptAt = new int[tileCount];
+
+        cellHistory = new long[tileCount][3];
+        borderHistory = new long[tileCount][3];
+        historyCount = new int[tileCount];
+
+        cellCache = new long[tileCount][2];
+        borderCache = new long[tileCount][2];
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Checks if the cell at x, y is inside a sleeping tile.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public boolean isAsleep(int x, int y) {
+        return asleep[((y / TILE_SIZE) * tilesX) + (x / TILE_SIZE)];
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Gets the live cells on the outside of sleeping tiles that are next to an awake tile. Sleeping tiles' cells aren't
+    kept in the list of alive cells, but these ones can still bring cells in the awake tile next to them to life.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public ArrayList<Cell> getEdgeCells(int generation) {
+
+        ArrayList<Cell> edgeCells = new ArrayList<Cell>(0);
+
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+
+                int tile = (tileY * tilesX) + tileX;
+
+                if (asleep[tile] && hasAwakeNeighbour(tileX, tileY)) {
+                    addCells(edgeCells, tile, cellCache[tile][generation & 1] & EDGE);
+                }
+            }
+        }
+
+        return edgeCells;
+    }
+
+    private boolean hasAwakeNeighbour(int tileX, int tileY) {
+
+        for (int ty = tileY - 1; ty <= tileY + 1; ty++) {
+            for (int tx = tileX - 1; tx <= tileX + 1; tx++) {
+                if (tx >= 0 && tx < tilesX && ty >= 0 && ty < tilesY && !asleep[(ty * tilesX) + tx]) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Wakes the tile containing the cell at x, y and the tiles around it. Used when the user changes a cell by hand.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void wake(int x, int y) {
+
+        int tileX = x / TILE_SIZE;
+        int tileY = y / TILE_SIZE;
+
+        for (int ty = tileY - 1; ty <= tileY + 1; ty++) {
+            for (int tx = tileX - 1; tx <= tileX + 1; tx++) {
+                if (tx >= 0 && tx < tilesX && ty >= 0 && ty < tilesY) {
+                    wakeTile((ty * tilesX) + tx);
+                }
+            }
+        }
+    }
+
+    public void wakeTile(int tile) {
+
+        // The tile's live cells go back into the list of alive cells so they are updated again.
+        if (asleep[tile]) {
+            addCells(main.aliveCells, tile, getCells(tile % tilesX, tile / tilesX));
+        }
+
+        asleep[tile] = false;
+        historyCount[tile] = 0;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Runs at the start of a generation. A sleeping tile is only correct to replay while its border repeats along with
+    it, so any sleeping tile whose border no longer matches its cache is woken up. Borders can only change if a
+    neighbouring tile is awake or has only just gone to sleep, so tiles surrounded by long sleeping tiles are skipped.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void checkBorders(int generation) {
+
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+
+                int tile = (tileY * tilesX) + tileX;
+
+                if (asleep[tile] && hasChangingNeighbour(tileX, tileY, generation)) {
+                    if (getBorder(tileX, tileY) != borderCache[tile][generation & 1]) {
+                        wakeTile(tile);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean hasChangingNeighbour(int tileX, int tileY, int generation) {
+
+        for (int ty = tileY - 1; ty <= tileY + 1; ty++) {
+            for (int tx = tileX - 1; tx <= tileX + 1; tx++) {
+
+                if ((tx != tileX || ty != tileY) && tx >= 0 && tx < tilesX && ty >= 0 && ty < tilesY) {
+                    int tile = (ty * tilesX) + tx;
+
+                    if (!asleep[tile] || sleptAt[tile] > generation - 2) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Runs after the awake cells have been updated. Moves every sleeping tile on to its next cached state, only touching
+    the cells that changed.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void replay(int generation) {
+
+        for (int tile = 0; tile < asleep.length; tile++) {
+
+            if (!asleep[tile]) {
+                continue;
+            }
+
+            long previous = cellCache[tile][generation & 1];
+            long next = cellCache[tile][(generation + 1) & 1];
+
+            int originX = (tile % tilesX) * TILE_SIZE;
+            int originY = (tile / tilesX) * TILE_SIZE;
+
+            // Drawing the cells that changed.
+            for (long changed = previous ^ next; changed != 0; changed &= changed - 1) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                int x = originX + (bit % TILE_SIZE);
+                int y = originY + (bit / TILE_SIZE);
+
+                int state = ((next >>> bit) & 1) == 1 ? 1 : 2;
+                main.grid[y][x].id = state;
+                main.drawCell(state, x, y);
+
+                if (state == 1) {
+                    main.analytics.birth(x, y);
+                } else {
+                    main.analytics.death(x, y);
+                }
+            }
+        }
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Runs once the generation has finished. Records the cells and border of every awake tile and puts a tile to sleep
+    once it has repeated with a period of 1 (still lifes) or 2 (blinkers and the like). The live cells of tiles that
+    went to sleep are taken out of the list of alive cells.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public void record(int generation) {
+
+        boolean hasSlept = false;
+
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+
+                int tile = (tileY * tilesX) + tileX;
+
+                if (asleep[tile]) {
+                    continue;
+                }
+
+                long[] cells = cellHistory[tile];
+                long[] border = borderHistory[tile];
+
+                cells[2] = cells[1];
+                cells[1] = cells[0];
+                cells[0] = getCells(tileX, tileY);
+
+                border[2] = border[1];
+                border[1] = border[0];
+                border[0] = getBorder(tileX, tileY);
+
+                if (historyCount[tile] < 3) {
+                    historyCount[tile]++;
+                }
+
+                // Period 1, the tile and its border haven't changed.
+                if (historyCount[tile] >= 2 && cells[0] == cells[1] && border[0] == border[1]) {
+                    sleep(tile, generation, cells[0], cells[0], border[0], border[0]);
+                    hasSlept = true;
+                }
+
+                // Period 2, the tile and its border are the same as they were two generations ago.
+                else if (historyCount[tile] >= 3 && cells[0] == cells[2] && border[0] == border[2]) {
+                    sleep(tile, generation, cells[0], cells[1], border[0], border[1]);
+                    hasSlept = true;
+                }
+            }
+        }
+
+        if (hasSlept) {
+            main.aliveCells.removeIf(cell -> isAsleep(cell.x, cell.y));
+        }
+    }
+
+    private void sleep(int tile, int generation, long cells, long previousCells, long border, long previousBorder) {
+
+        asleep[tile] = true;
+        sleptAt[tile] = generation;
+
+        cellCache[tile][generation & 1] = cells;
+        cellCache[tile][(generation + 1) & 1] = previousCells;
+
+        borderCache[tile][generation & 1] = border;
+        borderCache[tile][(generation + 1) & 1] = previousBorder;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Packs the live cells of a tile into a long, one bit per cell going along each row. Cells off the edge of the grid
+    are dead.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public long getCells(int tileX, int tileY) {
+
+        long cells = 0;
+
+        for (int row = 0; row < TILE_SIZE; row++) {
+            for (int column = 0; column < TILE_SIZE; column++) {
+                if (isAlive((tileX * TILE_SIZE) + column, (tileY * TILE_SIZE) + row)) {
+                    cells |= 1L << ((row * TILE_SIZE) + column);
+                }
+            }
+        }
+
+        return cells;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Packs the ring of cells around a tile into a long. The top and bottom rows include the corners.
+    ----------------------------------------------------------------------------------------------------------------- */
+    public long getBorder(int tileX, int tileY) {
+
+        int left = (tileX * TILE_SIZE) - 1;
+        int top = (tileY * TILE_SIZE) - 1;
+        int right = left + TILE_SIZE + 1;
+        int bottom = top + TILE_SIZE + 1;
+
+        long border = 0;
+        int bit = 0;
+
+        for (int x = left; x <= right; x++) {
+            if (isAlive(x, top)) {
+                border |= 1L << bit;
+            }
+            if (isAlive(x, bottom)) {
+                border |= 1L << (bit + 1);
+            }
+            bit += 2;
+        }
+
+        for (int y = top + 1; y < bottom; y++) {
+            if (isAlive(left, y)) {
+                border |= 1L << bit;
+            }
+            if (isAlive(right, y)) {
+                border |= 1L << (bit + 1);
+            }
+            bit += 2;
+        }
+
+        return border;
+    }
+
+
+    /* -----------------------------------------------------------------------------------------------------------------
+    Adds the grid cells for each set bit of a tile to the list.
+    ----------------------------------------------------------------------------------------------------------------- */
+    private void addCells(ArrayList<Cell> list, int tile, long cells) {
+
+        int originX = (tile % tilesX) * TILE_SIZE;
+        int originY = (tile / tilesX) * TILE_SIZE;
+
+        for (; cells != 0; cells &= cells - 1) {
+            int bit = Long.numberOfTrailingZeros(cells);
+            list.add(main.grid[originY + (bit / TILE_SIZE)][originX + (bit % TILE_SIZE)]);
+        }
+    }
+
+    private boolean isAlive(int x, int y) {
+        return x >= 0 && x < MainWindow.gridWidth && y >= 0 && y < MainWindow.gridHeight && main.grid[y][x].id == 1;
+    }
+}